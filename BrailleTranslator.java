@@ -1,24 +1,105 @@
 package braille;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Contains methods to translate Braille to English and English to Braille using
  * a BST.
  * Reads encodings, adds characters, and traverses tree to find encodings.
  * 
+ * Multi-cell contractions are kept in a separate trie, not in the BST, so
+ * encodingsStartWith and getSymbolNode only see single-cell symbols;
+ * entriesStartWith covers both.
+ * 
  * @author Seth Kelley
  * @author Kal Pandit
  */
 public class BrailleTranslator {
 
-    private TreeNode treeRoot;
+    // Number of L/R steps in one Braille cell
+    private static final int CELL_WIDTH = 6;
+
+    // The published symbol tree and contraction trie, with the tables compiled
+    // from them. Readers take one snapshot and never lock; writers hold this
+    // object's lock, copy the nodes they change, and publish a new snapshot.
+    private final AtomicReference<Snapshot> snapshot;
+
+    /**
+     * An immutable view of the translator. Nothing reachable from a published
+     * snapshot is modified again.
+     */
+    private static final class Snapshot {
+        private final TreeNode root;
+        private final ContractionNode contractions;
+
+        // Flattened decoding table: index is the cell read as bits (L = 0, R = 1,
+        // first step most significant), value is the character or MIN_VALUE.
+        private final char[] decodeTable = new char[1 << CELL_WIDTH];
+
+        // Reverse index from character to encoding: an array for ASCII and a map
+        // for everything else
+        private final String[] asciiEncodings = new String[128];
+        private final HashMap<Character, String> otherEncodings = new HashMap<>();
+
+        Snapshot(TreeNode root, ContractionNode contractions) {
+            this.root = root;
+            this.contractions = contractions;
+            fillDecodeTable(root, 0, 0, decodeTable);
+
+            // Pre-order keeps the first match a full DFS would have found
+            ArrayList<Symbol> symbols = new ArrayList<>();
+            preOrder(root, symbols);
+            for (Symbol symbol : symbols) {
+                char c = symbol.getCharacter();
+                if (c < asciiEncodings.length) {
+                    if (asciiEncodings[c] == null) {
+                        asciiEncodings[c] = symbol.getEncoding();
+                    }
+                } else {
+                    otherEncodings.putIfAbsent(c, symbol.getEncoding());
+                }
+            }
+        }
+    }
+
+    /**
+     * A node in the contraction trie. Children are indexed by cell pattern,
+     * and text is set if the cells leading here spell a contraction.
+     */
+    private static class ContractionNode {
+        private final ContractionNode[] next;
+        private String text;
+
+        ContractionNode() {
+            next = new ContractionNode[1 << CELL_WIDTH];
+        }
+
+        ContractionNode(ContractionNode source) {
+            next = source.next.clone();
+            text = source.text;
+        }
+    }
 
     /**
      * Default constructor, sets symbols to an empty ArrayList
      */
     public BrailleTranslator() {
-        treeRoot = null;
+        snapshot = new AtomicReference<>(new Snapshot(null, null));
     }
 
     /**
@@ -59,53 +140,110 @@ public class BrailleTranslator {
     }
 
     /**
-     * Adds a character into the BST rooted at treeRoot.
+     * Adds a character into the BST of the current snapshot, copying the nodes
+     * on its path and publishing a new snapshot, so readers never see a half-added
+     * symbol.
      * Traces encoding path (0 = left, 1 = right), starting with an empty root.
      * Last digit of encoding indicates position (left or right) of character within
      * parent.
      * 
      * @param newSymbol the new symbol object to add
      */
-    public void addCharacter(Symbol newSymbol) {
-        String encoding = newSymbol.getEncoding();
-        char character = newSymbol.getCharacter();
+    public synchronized void addCharacter(Symbol newSymbol) {
+        Snapshot current = snapshot.get();
+        TreeNode root = insertSymbol(current.root, newSymbol, true);
+        snapshot.set(new Snapshot(root, current.contractions));
+     }
 
-        if(treeRoot == null) {
-            treeRoot = new TreeNode(new Symbol(""), null, null);
+    /**
+     * Builds a new tree from all the given encodings at once and swaps it in,
+     * so a whole table can be reloaded while the old tree stays readable.
+     * characters[i] is encoded by encodings[i]; later entries replace earlier
+     * ones with the same encoding.
+     * 
+     * @param characters the characters to add
+     * @param encodings the encoding of each character
+     */
+    public synchronized void buildSymbolTree(char[] characters, String[] encodings) {
+        if (characters.length != encodings.length) {
+            throw new IllegalArgumentException("Got " + characters.length + " characters but " + encodings.length + " encodings");
+        }
+        TreeNode root = null;
+        for (int i = 0; i < characters.length; i++) {
+            // The new tree is private until published, so it is built in place
+            root = insertSymbol(root, new Symbol(characters[i], encodings[i]), false);
         }
+        snapshot.set(new Snapshot(root, snapshot.get().contractions));
+    }
 
-        TreeNode curr = treeRoot;
-        String partEncoding = "";
+    /**
+     * Places newSymbol at the end of its encoding path below root, creating
+     * placeholder nodes as needed. A placeholder's encoding is only cut from
+     * the full encoding when the node is new, so building in place allocates
+     * nothing along existing paths.
+     * 
+     * If copyPath is set, every node on the path is copied and the originals are
+     * left untouched, so a published tree can be updated without readers
+     * seeing the change until the new root is published.
+     * 
+     * @return the root of the updated tree
+     */
+    private static TreeNode insertSymbol(TreeNode root, Symbol newSymbol, boolean copyPath) {
+        String encoding = newSymbol.getEncoding();
+        if (root == null) {
+            root = new TreeNode(new Symbol(""), null, null);
+        } else if (copyPath) {
+            root = copyOf(root);
+        }
+        TreeNode curr = root;
 
         for(int i = 0; i < encoding.length(); i++) {
             char direction = encoding.charAt(i);
-            partEncoding += direction;
 
             if (direction == 'L') {
-                if (curr.getLeft() == null) {
-                    curr.setLeft(new TreeNode(new Symbol(Character.MIN_VALUE, partEncoding), null, null));
+                TreeNode next = curr.getLeft();
+                if (next == null) {
+                    next = new TreeNode(new Symbol(Character.MIN_VALUE, encoding.substring(0, i + 1)), null, null);
+                } else if (copyPath) {
+                    next = copyOf(next);
                 }
-                curr = curr.getLeft();
+                curr.setLeft(next);
+                curr = next;
             } else if (direction == 'R') {
-                if (curr.getRight() == null) {
-                    curr.setRight(new TreeNode(new Symbol(Character.MIN_VALUE, partEncoding), null, null));
+                TreeNode next = curr.getRight();
+                if (next == null) {
+                    next = new TreeNode(new Symbol(Character.MIN_VALUE, encoding.substring(0, i + 1)), null, null);
+                } else if (copyPath) {
+                    next = copyOf(next);
                 }
-                curr = curr.getRight();
+                curr.setRight(next);
+                curr = next;
             }
         }
-        curr.setSymbol(new Symbol(character, encoding));
-     }
+        curr.setSymbol(newSymbol);
+        return root;
+    }
+
+    private static TreeNode copyOf(TreeNode node) {
+        return new TreeNode(node.getSymbol(), node.getLeft(), node.getRight());
+    }
     
 
     /**
      * Given a sequence of characters, traverse the tree based on the characters
      * to find the TreeNode it leads to
      * 
+     * The node belongs to the published tree, which is shared with concurrent
+     * readers, so it must not be modified.
+     * 
      * @param encoding Sequence of braille (Ls and Rs)
      * @return Returns the TreeNode of where the characters lead to, or null if there is no path
      */
     public TreeNode getSymbolNode(String encoding) {
-        TreeNode curr = treeRoot;
+        return symbolNode(snapshot.get().root, encoding);
+    }
+    private static TreeNode symbolNode(TreeNode root, String encoding) {
+        TreeNode curr = root;
 
         for(int i = 0; i < encoding.length(); i++) {
             if (curr == null) {
@@ -134,30 +272,69 @@ public class BrailleTranslator {
      * @return Returns the String encoding of the character
      */
     public String findBrailleEncoding(char character) {
-        if (treeRoot == null) {
-            return null;
+        return findBrailleEncoding(snapshot.get(), character);
+    }
+    private static String findBrailleEncoding(Snapshot current, char character) {
+        if (character < current.asciiEncodings.length) {
+            return current.asciiEncodings[character];
         }
-        return findBrailleEncodingHelper(treeRoot, character);
+        return current.otherEncodings.get(character);
     }
-    private String findBrailleEncodingHelper(TreeNode node, char character){
-        if (node == null) return null;
 
-        Symbol symbol = node.getSymbol();
-        if (symbol != null && symbol.hasCharacter() && symbol.getCharacter() == character){
-            return symbol.getEncoding();
+    /**
+     * Translates English text to Braille, one encoding per character.
+     * Characters with no encoding in the tree are skipped.
+     * 
+     * @param english the text to translate
+     * @return the Braille encodings of the text, concatenated
+     */
+    public String translateEnglish(String english) {
+        Snapshot current = snapshot.get();
+        StringBuilder result = new StringBuilder(english.length() * CELL_WIDTH);
+        for (int i = 0; i < english.length(); i++) {
+            String encoding = findBrailleEncoding(current, english.charAt(i));
+            if (encoding != null) {
+                result.append(encoding);
+            }
         }
+        return result.toString();
+    }
 
-        String leftSearch = findBrailleEncodingHelper(node.getLeft(), character);
-        if(leftSearch != null) {
-            return leftSearch;
+    /**
+     * Translates English text from a Reader to Braille on a Writer, a buffer
+     * at a time, so inputs of any size can be encoded.
+     * 
+     * @param in the English text
+     * @param out where the Braille encodings are written
+     * @return the number of characters skipped because they have no encoding
+     * @throws IOException if reading or writing fails
+     */
+    public long translateEnglish(Reader in, Writer out) throws IOException {
+        Snapshot current = snapshot.get();
+        char[] buffer = new char[8192];
+        long skipped = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                String encoding = findBrailleEncoding(current, buffer[i]);
+                if (encoding != null) {
+                    out.write(encoding);
+                } else {
+                    skipped++;
+                }
+            }
         }
-        return findBrailleEncodingHelper(node.getRight(), character);
+        out.flush();
+        return skipped;
     }
 
     /**
      * Given a prefix to a Braille encoding, return an ArrayList of all encodings that start with
      * that prefix
      * 
+     * Only single-cell symbols are returned, since a Symbol holds one character;
+     * use entriesStartWith to include contractions.
+     * 
      * @param start the prefix to search for
      * @return all Symbol nodes which have encodings starting with the given prefix
      */
@@ -172,7 +349,106 @@ public class BrailleTranslator {
         preOrder(ptr, result); 
         return result; 
     }
-    private void preOrder(TreeNode node, ArrayList<Symbol> result) {
+
+    /**
+     * One translation table entry: a single-cell symbol or a multi-cell contraction
+     */
+    public static final class BrailleEntry {
+        private final String encoding;
+        private final String text;
+
+        BrailleEntry(String encoding, String text) {
+            this.encoding = encoding;
+            this.text = text;
+        }
+
+        public String getEncoding() {
+            return encoding;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * Given a prefix to a Braille encoding, return every single-cell symbol and
+     * every contraction whose encoding starts with that prefix. Symbols come
+     * first, in the order encodingsStartWith returns them, then contractions
+     * in cell order. The prefix need not end on a cell boundary.
+     * 
+     * @param start the prefix to search for
+     * @return all entries with encodings starting with the given prefix
+     */
+    public ArrayList<BrailleEntry> entriesStartWith(String start) {
+        Snapshot current = snapshot.get();
+        ArrayList<BrailleEntry> result = new ArrayList<>();
+
+        TreeNode ptr = symbolNode(current.root, start);
+        if (ptr != null) {
+            ArrayList<Symbol> symbols = new ArrayList<>();
+            preOrder(ptr, symbols);
+            for (Symbol symbol : symbols) {
+                result.add(new BrailleEntry(symbol.getEncoding(), String.valueOf(symbol.getCharacter())));
+            }
+        }
+
+        ContractionNode node = current.contractions;
+        int fullCells = start.length() / CELL_WIDTH;
+        for (int i = 0; node != null && i < fullCells; i++) {
+            int cell = cellIndex(start, i * CELL_WIDTH);
+            node = cell >= 0 ? node.next[cell] : null;
+        }
+        if (node == null) {
+            return result;
+        }
+
+        // The rest of the prefix fixes the leading bits of the next cell
+        int partialWidth = start.length() - fullCells * CELL_WIDTH;
+        int partialBits = 0;
+        for (int i = fullCells * CELL_WIDTH; i < start.length(); i++) {
+            char direction = start.charAt(i);
+            if (direction != 'L' && direction != 'R') {
+                return result;
+            }
+            partialBits = (partialBits << 1) | (direction == 'R' ? 1 : 0);
+        }
+
+        StringBuilder encoding = new StringBuilder(start.substring(0, fullCells * CELL_WIDTH));
+        if (partialWidth == 0) {
+            collectContractions(node, encoding, result);
+            return result;
+        }
+        for (int cell = 0; cell < node.next.length; cell++) {
+            if (node.next[cell] != null && (cell >>> (CELL_WIDTH - partialWidth)) == partialBits) {
+                int length = encoding.length();
+                appendCell(encoding, cell);
+                collectContractions(node.next[cell], encoding, result);
+                encoding.setLength(length);
+            }
+        }
+        return result;
+    }
+    private static void collectContractions(ContractionNode node, StringBuilder encoding, ArrayList<BrailleEntry> result) {
+        if (node.text != null) {
+            result.add(new BrailleEntry(encoding.toString(), node.text));
+        }
+        for (int cell = 0; cell < node.next.length; cell++) {
+            if (node.next[cell] != null) {
+                int length = encoding.length();
+                appendCell(encoding, cell);
+                collectContractions(node.next[cell], encoding, result);
+                encoding.setLength(length);
+            }
+        }
+    }
+    private static void appendCell(StringBuilder encoding, int cell) {
+        for (int bit = CELL_WIDTH - 1; bit >= 0; bit--) {
+            encoding.append(((cell >>> bit) & 1) == 1 ? 'R' : 'L');
+        }
+    }
+
+    private static void preOrder(TreeNode node, ArrayList<Symbol> result) {
         if (node == null) return;
 
         Symbol symbol = node.getSymbol();
@@ -185,8 +461,9 @@ public class BrailleTranslator {
 
     /**
      * Reads an input file and processes encodings six chars at a time.
-     * Then, calls getSymbolNode on each six char chunk to get the
-     * character.
+     * Each six char chunk is read as a 6-bit pattern and looked up in a
+     * flat 64-entry table compiled from the tree, so no String is
+     * created per character.
      * 
      * Return the result of all translations, as a String.
      * @param input the input file
@@ -195,71 +472,456 @@ public class BrailleTranslator {
     public String translateBraille(String input) {
         StdIn.setFile(input);
         String braille = StdIn.readLine();
-        StringBuilder result = new StringBuilder();
+        char[] table = snapshot.get().decodeTable;
+        StringBuilder result = new StringBuilder(braille.length() / CELL_WIDTH);
+
+        for(int i = 0; i + CELL_WIDTH <= braille.length(); i += CELL_WIDTH) {
+            int cell = cellIndex(braille, i);
+            if (cell >= 0 && table[cell] != Character.MIN_VALUE) {
+                result.append(table[cell]);
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Decodes Braille from a Reader to a Writer in fixed-size buffers, so inputs
+     * of any size and any number of lines can be translated. Whitespace between
+     * chars is ignored, and a cell may span buffer or line boundaries.
+     * 
+     * A malformed cell (a char other than L or R, a pattern with no character,
+     * or a partial cell at the end of input) is counted and skipped.
+     * 
+     * @param in the Braille input
+     * @param out where the translated text is written
+     * @return the number of malformed cells
+     * @throws IOException if reading or writing fails
+     */
+    public long translateBraille(Reader in, Writer out) throws IOException {
+        return decode(snapshot.get().decodeTable, in, out);
+    }
+    private static long decode(char[] table, Reader in, Writer out) throws IOException {
+        char[] buffer = new char[8192];
+        char[] decoded = new char[buffer.length / CELL_WIDTH + 1];
+        long malformed = 0;
+
+        // Cell being assembled, carried across buffers
+        int cell = 0;
+        int width = 0;
+        boolean valid = true;
+
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            int count = 0;
+            for (int i = 0; i < read; i++) {
+                char direction = buffer[i];
+                if (Character.isWhitespace(direction)) {
+                    continue;
+                }
+                cell <<= 1;
+                if (direction == 'R') {
+                    cell |= 1;
+                } else if (direction != 'L') {
+                    valid = false;
+                }
+                if (++width == CELL_WIDTH) {
+                    if (valid && table[cell] != Character.MIN_VALUE) {
+                        decoded[count++] = table[cell];
+                    } else {
+                        malformed++;
+                    }
+                    cell = 0;
+                    width = 0;
+                    valid = true;
+                }
+            }
+            out.write(decoded, 0, count);
+        }
+        if (width > 0) {
+            malformed++;
+        }
+        out.flush();
+        return malformed;
+    }
+
+    // Cells decoded by one fork-join task before it stops splitting
+    private static final int PARALLEL_THRESHOLD = 16384;
+
+    /**
+     * Translates Braille text that is already in memory, splitting it at cell
+     * boundaries across the common fork-join pool. Unlike translateBraille(String),
+     * the argument is the Braille itself, not a file name; use translateBrailleFiles
+     * for files. Every task decodes against the same table snapshot, and the
+     * output keeps the input order. Unmapped or malformed cells and a trailing
+     * partial cell are skipped, as in translateBraille.
+     * 
+     * @param braille the Braille text (Ls and Rs), with no whitespace between cells
+     * @return the translated text
+     */
+    public String translateBrailleParallel(String braille) {
+        char[] table = snapshot.get().decodeTable;
+        int cells = braille.length() / CELL_WIDTH;
+        char[] decoded = new char[cells];
+        ForkJoinPool.commonPool().invoke(new DecodeTask(braille, table, decoded, 0, cells));
+
+        // Unmapped cells were left as MIN_VALUE; compact them out in order
+        int length = 0;
+        for (int i = 0; i < cells; i++) {
+            if (decoded[i] != Character.MIN_VALUE) {
+                decoded[length++] = decoded[i];
+            }
+        }
+        return new String(decoded, 0, length);
+    }
+
+    /**
+     * Decodes cells [from, to) of the input into the same positions of decoded,
+     * splitting in half until a range is at most PARALLEL_THRESHOLD cells.
+     */
+    private static class DecodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String braille;
+        private final char[] table;
+        private final char[] decoded;
+        private final int from;
+        private final int to;
+
+        DecodeTask(String braille, char[] table, char[] decoded, int from, int to) {
+            this.braille = braille;
+            this.table = table;
+            this.decoded = decoded;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    int cell = cellIndex(braille, i * CELL_WIDTH);
+                    decoded[i] = cell >= 0 ? table[cell] : Character.MIN_VALUE;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new DecodeTask(braille, table, decoded, from, mid),
+                      new DecodeTask(braille, table, decoded, mid, to));
+        }
+    }
+
+    /**
+     * Translates a batch of Braille files on the common fork-join pool, one task
+     * per file. Each file is streamed through the same decoder as
+     * translateBraille(Reader, Writer), so no file has to be read into a single
+     * String first, and whitespace and line breaks between cells are ignored.
+     * Every file decodes against the same table snapshot.
+     * 
+     * @param files the Braille input files
+     * @return the translated text of each file, in the same order as files
+     * @throws IOException if any file cannot be read
+     */
+    public ArrayList<String> translateBrailleFiles(List<Path> files) throws IOException {
+        char[] table = snapshot.get().decodeTable;
+        String[] translated = new String[files.size()];
+        try {
+            ForkJoinPool.commonPool().invoke(new FileDecodeTask(files, table, translated, 0, files.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new ArrayList<>(Arrays.asList(translated));
+    }
 
-        for(int i = 0; i < braille.length(); i += 6) {
-            String chunk = braille.substring(i, i + 6);
-            TreeNode node = getSymbolNode(chunk);
-            if (node != null && node.getSymbol() != null && node.getSymbol().hasCharacter()){
-                result.append(node.getSymbol().getCharacter());
+    /**
+     * Decodes files [from, to) into the same positions of translated, splitting
+     * the range in half until each task holds one file.
+     */
+    private static class FileDecodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final char[] table;
+        private final String[] translated;
+        private final int from;
+        private final int to;
+
+        FileDecodeTask(List<Path> files, char[] table, String[] translated, int from, int to) {
+            this.files = files;
+            this.table = table;
+            this.translated = translated;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new FileDecodeTask(files, table, translated, from, mid),
+                          new FileDecodeTask(files, table, translated, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                StringWriter out = new StringWriter();
+                try (Reader in = Files.newBufferedReader(files.get(i), StandardCharsets.UTF_8)) {
+                    decode(table, in, out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                translated[i] = out.toString();
+            }
+        }
+    }
+
+    /**
+     * Adds a contraction: a sequence of one or more cells that stands for a
+     * word or letter group. Replaces any contraction with the same encoding.
+     * 
+     * @param encoding the cells, as a multiple of six Ls and Rs
+     * @param text what the cells translate to
+     */
+    public synchronized void addContraction(String encoding, String text) {
+        if (encoding.isEmpty() || encoding.length() % CELL_WIDTH != 0) {
+            throw new IllegalArgumentException("Contraction encoding must be a whole number of cells: " + encoding);
+        }
+        Snapshot current = snapshot.get();
+        ContractionNode root = current.contractions == null ? new ContractionNode() : new ContractionNode(current.contractions);
+        ContractionNode curr = root;
+        for (int i = 0; i < encoding.length(); i += CELL_WIDTH) {
+            int cell = cellIndex(encoding, i);
+            if (cell < 0) {
+                throw new IllegalArgumentException("Contraction encoding may only contain L and R: " + encoding);
             }
+            ContractionNode next = curr.next[cell];
+            next = next == null ? new ContractionNode() : new ContractionNode(next);
+            curr.next[cell] = next;
+            curr = next;
         }
+        curr.text = text;
+        snapshot.set(new Snapshot(current.root, root));
+    }
 
+    /**
+     * Translates a single line of contracted Braille. At each cell the longest
+     * contraction starting there is used; if none matches, the cell is decoded
+     * as a single character through the symbol tree. Unmapped cells and a
+     * trailing partial cell are skipped.
+     * 
+     * Each position re-scans up to the longest contraction, so the worst case
+     * is O(n * L) for n cells and a longest contraction of L cells.
+     * 
+     * @param braille the Braille input
+     * @return the translated text
+     */
+    public String translateContracted(String braille) {
+        Snapshot current = snapshot.get();
+        char[] table = current.decodeTable;
+        StringBuilder result = new StringBuilder(braille.length() / CELL_WIDTH);
+
+        int i = 0;
+        while (i + CELL_WIDTH <= braille.length()) {
+            String match = null;
+            int matchEnd = i;
+            ContractionNode curr = current.contractions;
+            for (int j = i; curr != null && j + CELL_WIDTH <= braille.length(); j += CELL_WIDTH) {
+                int cell = cellIndex(braille, j);
+                curr = cell >= 0 ? curr.next[cell] : null;
+                if (curr != null && curr.text != null) {
+                    match = curr.text;
+                    matchEnd = j + CELL_WIDTH;
+                }
+            }
+
+            if (match != null) {
+                result.append(match);
+                i = matchEnd;
+            } else {
+                int cell = cellIndex(braille, i);
+                if (cell >= 0 && table[cell] != Character.MIN_VALUE) {
+                    result.append(table[cell]);
+                }
+                i += CELL_WIDTH;
+            }
+        }
         return result.toString();
     }
 
+    /**
+     * Reads the six chars starting at offset as a 6-bit pattern.
+     * 
+     * @return the table index of the cell, or -1 if it contains anything but L and R
+     */
+    private static int cellIndex(CharSequence braille, int offset) {
+        int cell = 0;
+        for(int i = offset; i < offset + CELL_WIDTH; i++) {
+            char direction = braille.charAt(i);
+            if (direction == 'L') {
+                cell <<= 1;
+            } else if (direction == 'R') {
+                cell = (cell << 1) | 1;
+            } else {
+                return -1;
+            }
+        }
+        return cell;
+    }
+
+    // Fills table with the characters at depth CELL_WIDTH below node
+    private static void fillDecodeTable(TreeNode node, int depth, int bits, char[] table) {
+        if (node == null) return;
+
+        if (depth == CELL_WIDTH) {
+            Symbol symbol = node.getSymbol();
+            if (symbol != null && symbol.hasCharacter()) {
+                table[bits] = symbol.getCharacter();
+            }
+            return;
+        }
+        fillDecodeTable(node.getLeft(), depth + 1, bits << 1, table);
+        fillDecodeTable(node.getRight(), depth + 1, (bits << 1) | 1, table);
+    }
 
     /**
      * Given a character, delete it from the tree and delete any encodings not
      * attached to a character (ie. no children).
      * 
+     * Records the path on the way down, then prunes empty ancestors on the
+     * way back up, so the tree is walked once.
+     * 
      * @param symbol the symbol to delete
      */
-    public void deleteSymbol(char symbol) {
-        String encoding = findBrailleEncoding(symbol);
-        if(encoding == null || treeRoot == null) return;
+    public synchronized void deleteSymbol(char symbol) {
+        Snapshot current = snapshot.get();
+        String encoding = findBrailleEncoding(current, symbol);
+        if(encoding == null || current.root == null) return;
 
-        deleteSymbolAtEncoding(treeRoot, null, encoding, 0);
+        int depth = 0;
+        TreeNode[] path = new TreeNode[encoding.length() + 1];
+        char[] directions = new char[encoding.length()];
+        path[0] = current.root;
 
-        for(int i = encoding.length() - 1; i >= 0; i--) {
-            String subEncoding = encoding.substring(0, i);
-            TreeNode node = getSymbolNode(subEncoding);
+        for(int i = 0; i < encoding.length(); i++) {
+            char direction = encoding.charAt(i);
+            if(direction != 'L' && direction != 'R') continue;
 
-            if(node != null && !node.getSymbol().hasCharacter() && node.getLeft() == null && node.getRight() == null) {
-                deleteSymbolAtEncoding(treeRoot, null, subEncoding, 0);
-            }
+            TreeNode next = (direction == 'L') ? path[depth].getLeft() : path[depth].getRight();
+            if(next == null) return;
+            directions[depth] = direction;
+            path[++depth] = next;
         }
-        if(treeRoot != null && !treeRoot.getSymbol().hasCharacter() && treeRoot.getLeft() == null && treeRoot.getRight() == null) {
-            treeRoot = null;
+        if(depth == 0) return;
+
+        // The symbol's node goes, and so does each ancestor that would be left
+        // without a character or children
+        int cut = depth;
+        while(cut > 1 && !path[cut - 1].getSymbol().hasCharacter() && otherChild(path[cut - 1], directions[cut - 1]) == null) {
+            cut--;
         }
+
+        // Copy the path above the cut on the way back up; the old tree is untouched
+        TreeNode below = null;
+        for(int i = cut - 1; i >= 0; i--) {
+            TreeNode copy = copyOf(path[i]);
+            if(directions[i] == 'L') {
+                copy.setLeft(below);
+            } else {
+                copy.setRight(below);
+            }
+            below = copy;
+        }
+        snapshot.set(new Snapshot(isEmptyLeaf(below) ? null : below, current.contractions));
     }
-    private void deleteSymbolAtEncoding(TreeNode node, TreeNode parent, String encoding, int index) {
-        if(node == null || index >= encoding.length()) return;
 
-        char direction = encoding.charAt(index);
-        TreeNode next = (direction == 'L') ? node.getLeft() : node.getRight();
+    private static TreeNode otherChild(TreeNode node, char direction) {
+        return (direction == 'L') ? node.getRight() : node.getLeft();
+    }
 
-        if(index == encoding.length() - 1) {
-            if(direction == 'L') {
-                node.setLeft(null);
-            } else if (direction == 'R') {
-                node.setRight(null);
+    /**
+     * Deletes every given character from the tree. All symbol nodes are detached
+     * first, then empty encodings are pruned in one pass, so subtrees shared by
+     * several deleted characters are only pruned once.
+     * 
+     * @param symbols the characters to delete
+     */
+    public synchronized void deleteSymbols(Collection<Character> symbols) {
+        Snapshot current = snapshot.get();
+        if(current.root == null || symbols.isEmpty()) return;
+
+        ArrayList<String> encodings = new ArrayList<>(symbols.size());
+        for(char symbol : symbols) {
+            String encoding = findBrailleEncoding(current, symbol);
+            if(encoding != null) {
+                encodings.add(encoding);
             }
+        }
+
+        // Work on a private copy, since most of the tree may change
+        TreeNode root = copyTree(current.root);
+        for(String encoding : encodings) {
+            TreeNode parent = null;
+            TreeNode curr = root;
+            char last = 0;
+            for(int i = 0; i < encoding.length() && curr != null; i++) {
+                char direction = encoding.charAt(i);
+                if(direction != 'L' && direction != 'R') continue;
+                parent = curr;
+                last = direction;
+                curr = (direction == 'L') ? curr.getLeft() : curr.getRight();
+            }
+            if(parent != null && curr != null) {
+                detachChild(parent, last);
+            }
+        }
+        snapshot.set(new Snapshot(pruneEmpty(root) ? null : root, current.contractions));
+    }
+
+    private static TreeNode copyTree(TreeNode node) {
+        if(node == null) return null;
+        return new TreeNode(node.getSymbol(), copyTree(node.getLeft()), copyTree(node.getRight()));
+    }
+
+    // Post-order prune of placeholder leaves; returns true if node itself is now an empty leaf
+    private static boolean pruneEmpty(TreeNode node) {
+        if(node.getLeft() != null && pruneEmpty(node.getLeft())) {
+            node.setLeft(null);
+        }
+        if(node.getRight() != null && pruneEmpty(node.getRight())) {
+            node.setRight(null);
+        }
+        return isEmptyLeaf(node);
+    }
+
+    private static boolean isEmptyLeaf(TreeNode node) {
+        return node != null && !node.getSymbol().hasCharacter() && node.getLeft() == null && node.getRight() == null;
+    }
+
+    private static void detachChild(TreeNode parent, char direction) {
+        if(direction == 'L') {
+            parent.setLeft(null);
         } else {
-            deleteSymbolAtEncoding(next, node, encoding, index + 1);
+            parent.setRight(null);
         }
     }
 
+    /**
+     * Returns the root of the current tree. The tree is shared with concurrent
+     * readers, so it must not be modified.
+     */
     public TreeNode getTreeRoot() {
-        return this.treeRoot;
+        return snapshot.get().root;
     }
 
-    public void setTreeRoot(TreeNode treeRoot) {
-        this.treeRoot = treeRoot;
+    /**
+     * Publishes treeRoot as the current tree. The caller must not modify the
+     * tree after handing it over.
+     */
+    public synchronized void setTreeRoot(TreeNode treeRoot) {
+        snapshot.set(new Snapshot(treeRoot, snapshot.get().contractions));
     }
 
     public void printTree() {
-        printTree(treeRoot, "", false, true);
+        printTree(snapshot.get().root, "", false, true);
     }
 
     private void printTree(TreeNode n, String indent, boolean isRight, boolean isRoot) {